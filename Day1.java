@@ -1,34 +1,358 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
 
 public class Day1 {
-    public static void main(String[] args) {
-        var scanner = new Scanner(System.in);
-        var currentCalories = 0;
-        var totalCalories = new ArrayList<Integer>();
-        while(scanner.hasNextLine()) {
-            var calories = tryParse(scanner.nextLine());
-            if(calories < 0) {
-                totalCalories.add(currentCalories);
-                currentCalories = 0;
-            } else {
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("stats")) {
+            printStatistics(System.in);
+            return;
+        }
+        var topCalories = args.length > 0 && args[0].equals("parallel")
+                ? ParallelCalorieCounter.count(Path.of(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors(), 3)
+                : readTopCalories(System.in, 3);
+        System.out.println("Highest = " + topCalories.highest());
+        System.out.println("Top 3 = " + topCalories.sumOfTop(3));
+    }
+
+    private static void printStatistics(InputStream input) throws IOException {
+        var histogram = new CalorieHistogram();
+        var parser = new CalorieParser(histogram::add);
+        parser.parse(input);
+        parser.finish();
+        System.out.println("Elves = " + histogram.count());
+        System.out.println("p50 = " + histogram.percentile(50));
+        System.out.println("p90 = " + histogram.percentile(90));
+        System.out.println("p99 = " + histogram.percentile(99));
+        System.out.println("Max = " + histogram.max());
+    }
+
+    private static TopCalories readTopCalories(InputStream input, int capacity) throws IOException {
+        var topCalories = new TopCalories(capacity);
+        var parser = new CalorieParser(topCalories::add);
+        parser.parse(input);
+        parser.finish();
+        return topCalories;
+    }
+
+    // Splits a file in chunks aligned to group boundaries and sums each chunk on a fork-join pool
+    private static class ParallelCalorieCounter {
+        private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+        private static final int BOUNDARY_BUFFER_SIZE = 4096;
+
+        public static TopCalories count(Path path, int numberOfChunks, int capacity) throws IOException {
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                var tasks = chunkBoundaries(channel, numberOfChunks).stream()
+                        .map(chunk -> new ChunkTask(channel, chunk[0], chunk[1], capacity))
+                        .toList();
+                var topCalories = new TopCalories(capacity);
+                for (var task : ForkJoinTask.invokeAll(tasks)) {
+                    topCalories.addAll(task.join());
+                }
+                return topCalories;
+            }
+        }
+
+        private static List<long[]> chunkBoundaries(FileChannel channel, int numberOfChunks) throws IOException {
+            var size = channel.size();
+            var chunks = Math.max(numberOfChunks, (int) ((size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE));
+            var boundaries = new ArrayList<long[]>();
+            var start = 0L;
+            for (int i = 1; i <= chunks && start < size; i++) {
+                var end = i == chunks ? size : Math.max(start, nextGroupStart(channel, size * i / chunks));
+                if(end - start > MAX_CHUNK_SIZE) {
+                    throw new IllegalStateException("Group boundary not found within %d bytes from %d".formatted(MAX_CHUNK_SIZE, start));
+                }
+                if(end > start) {
+                    boundaries.add(new long[] {start, end});
+                    start = end;
+                }
+            }
+            return boundaries;
+        }
+
+        // Position just after the next blank line at or after the given position, or the file size if there is none
+        private static long nextGroupStart(FileChannel channel, long position) throws IOException {
+            var buffer = ByteBuffer.allocate(BOUNDARY_BUFFER_SIZE);
+            var lineIsBlank = false;
+            while(channel.read(buffer.clear(), position) > 0) {
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    var character = buffer.get();
+                    position++;
+                    if(character == '\n') {
+                        if(lineIsBlank) {
+                            return position;
+                        }
+                        lineIsBlank = true;
+                    } else if(character != '\r') {
+                        lineIsBlank = false;
+                    }
+                }
+            }
+            return channel.size();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class ChunkTask extends RecursiveTask<TopCalories> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final int capacity;
+
+        public ChunkTask(FileChannel channel, long start, long end, int capacity) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected TopCalories compute() {
+            var topCalories = new TopCalories(capacity);
+            var parser = new CalorieParser(topCalories::add);
+            try {
+                parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            parser.finish();
+            return topCalories;
+        }
+    }
+
+    // Reads calories straight from bytes, a blank line ends the current elf's group
+    private static class CalorieParser {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final IntConsumer groupConsumer;
+        private int currentCalories;
+        private int calories;
+        private boolean lineHasDigits;
+        private boolean groupHasCalories;
+
+        public CalorieParser(IntConsumer groupConsumer) {
+            this.groupConsumer = groupConsumer;
+        }
+
+        public void parse(InputStream input) throws IOException {
+            var buffer = new byte[BUFFER_SIZE];
+            int read;
+            while((read = input.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    consume(buffer[i]);
+                }
+            }
+        }
+
+        public void parse(ByteBuffer buffer) {
+            while(buffer.hasRemaining()) {
+                consume(buffer.get());
+            }
+        }
+
+        public void finish() {
+            endLine();
+            if(groupHasCalories) {
+                endGroup();
+            }
+        }
+
+        private void consume(byte character) {
+            if(character >= '0' && character <= '9') {
+                calories = calories * 10 + (character - '0');
+                lineHasDigits = true;
+            } else if(character == '\n') {
+                if(lineHasDigits) {
+                    endLine();
+                } else {
+                    endGroup();
+                }
+            }
+        }
+
+        private void endLine() {
+            if(lineHasDigits) {
                 currentCalories += calories;
+                groupHasCalories = true;
             }
+            calories = 0;
+            lineHasDigits = false;
         }
-        if(currentCalories > 0) {
-            totalCalories.add(currentCalories);
+
+        private void endGroup() {
+            groupConsumer.accept(currentCalories);
+            currentCalories = 0;
+            groupHasCalories = false;
         }
-        var sorted = totalCalories.stream().sorted(Collections.reverseOrder()).toList();
-        System.out.println("Highest = " + sorted.get(0));
-        System.out.println("Top 3 = " + (sorted.get(0) + sorted.get(1) + sorted.get(2)));
     }
 
-    private static int tryParse(String line) {
-        try {
-            return Integer.parseInt(line);
-        } catch (NumberFormatException e) {
-            return -1;
+    // Keeps the K highest totals in a fixed size min-heap, the smallest kept total is at index 0
+    private static class TopCalories {
+        private final int[] heap;
+        private int size;
+
+        public TopCalories(int capacity) {
+            if(capacity < 1) {
+                throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+            }
+            heap = new int[capacity];
+        }
+
+        public void add(int calories) {
+            if(size < heap.length) {
+                heap[size] = calories;
+                siftUp(size++);
+            } else if(calories > heap[0]) {
+                heap[0] = calories;
+                siftDown(0);
+            }
+        }
+
+        public void addAll(TopCalories other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.heap[i]);
+            }
+        }
+
+        public int highest() {
+            return sumOfTop(1);
+        }
+
+        public int sumOfTop(int amount) {
+            if(amount > size) {
+                throw new IllegalStateException("Only %d totals available, %d requested".formatted(size, amount));
+            }
+            var sorted = sortedDescending();
+            var sum = 0;
+            for (int i = 0; i < amount; i++) {
+                sum += sorted[i];
+            }
+            return sum;
+        }
+
+        public int[] sortedDescending() {
+            var sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                var temp = sorted[i];
+                sorted[i] = sorted[j];
+                sorted[j] = temp;
+            }
+            return sorted;
+        }
+
+        private void siftUp(int index) {
+            while(index > 0) {
+                var parent = (index - 1) / 2;
+                if(heap[parent] <= heap[index]) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while(true) {
+                var left = index * 2 + 1;
+                if(left >= size) {
+                    return;
+                }
+                var smallest = left + 1 < size && heap[left + 1] < heap[left] ? left + 1 : left;
+                if(heap[index] <= heap[smallest]) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int index, int otherIndex) {
+            var temp = heap[index];
+            heap[index] = heap[otherIndex];
+            heap[otherIndex] = temp;
+        }
+
+        @Override
+        public String toString() {
+            return "TopCalories{" +
+                    "heap=" + Arrays.toString(Arrays.copyOf(heap, size)) +
+                    '}';
+        }
+    }
+
+    // Log bucketed histogram, values below 2^SUB_BUCKET_BITS are exact and larger values keep SUB_BUCKET_BITS significant bits
+    private static class CalorieHistogram {
+        private static final int SUB_BUCKET_BITS = 7;
+        private static final int HALF_SUB_BUCKET_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+        private static final int MAX_SHIFT = 31 - SUB_BUCKET_BITS;
+
+        private final long[] counts = new long[(MAX_SHIFT + 2) * HALF_SUB_BUCKET_COUNT];
+        private long count;
+        private int max;
+
+        public void add(int calories) {
+            if(calories < 0) {
+                throw new IllegalArgumentException("Calories can not be negative, was " + calories);
+            }
+            counts[bucketIndex(calories)]++;
+            count++;
+            max = Math.max(max, calories);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public int max() {
+            return max;
+        }
+
+        // Highest value in the bucket holding the given percentile, never above the exact max
+        public int percentile(double percentile) {
+            if(count == 0) {
+                throw new IllegalStateException("No totals recorded");
+            }
+            var rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            var seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) {
+                    return (int) Math.min(max, highestValueIn(i));
+                }
+            }
+            return max;
+        }
+
+        private static int bucketIndex(int value) {
+            var shift = Math.max(0, 32 - Integer.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+            return shift * HALF_SUB_BUCKET_COUNT + (value >>> shift);
+        }
+
+        private static long highestValueIn(int index) {
+            var shift = Math.max(0, index / HALF_SUB_BUCKET_COUNT - 1);
+            var subBucket = index - shift * HALF_SUB_BUCKET_COUNT;
+            return ((long) (subBucket + 1) << shift) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "CalorieHistogram{" +
+                    "count=" + count +
+                    ", max=" + max +
+                    '}';
         }
     }
 }
@@ -1,35 +1,244 @@
-import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.stream.Stream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class Day2 {
-    public static void main(String[] args) {
-        var scanner = new Scanner(System.in);
-        var guide = new StrategyGuide(scanner);
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("parallel")) {
+            System.out.println("totalScore = " + MappedStrategyGuide.totalScore(Path.of(args[1])));
+            return;
+        }
+        if(args.length > 0 && args[0].equals("both")) {
+            var guide = new CombinedStrategyGuide();
+            guide.read(System.in);
+            System.out.println("totalScore = " + guide.shapeCodeTotalScore());
+            System.out.println("totalScore (XYZ as outcome) = " + guide.outcomeCodeTotalScore());
+            return;
+        }
+        var diagnostics = args.length > 0 && args[0].equals("trace") ? Diagnostics.PRINT_ROUNDS : Diagnostics.NONE;
+        var guide = new StrategyGuide(System.in, diagnostics);
         var totalScore = guide.totalScore();
         System.out.println("totalScore = " + totalScore);
     }
 
+    // Receives every scored round, only used when tracing the input
+    @FunctionalInterface
+    private interface Diagnostics {
+        Diagnostics NONE = (opponentCode, myCode, score) -> {};
+        Diagnostics PRINT_ROUNDS = (opponentCode, myCode, score) ->
+                System.out.println("line = %c %c, score = %d".formatted(opponentCode, myCode, score));
+
+        void round(int opponentCode, int myCode, int score);
+    }
+
+    @FunctionalInterface
+    private interface RoundConsumer {
+        void round(int opponentCode, int myCode);
+    }
+
+    // Reads the guide byte by byte and passes on the two codes of every line, only the current line's codes are kept
+    private static class RoundReader {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final RoundConsumer consumer;
+        private int column;
+        private int opponentCode;
+        private int myCode;
+
+        private RoundReader(RoundConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        public static void read(InputStream input, RoundConsumer consumer) throws IOException {
+            var reader = new RoundReader(consumer);
+            var buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    reader.consume(buffer[i]);
+                }
+            }
+            reader.endLine();
+        }
+
+        private void consume(byte character) {
+            if(character == '\n') {
+                endLine();
+            } else {
+                if(column == 0) {
+                    opponentCode = character;
+                } else if(column == 2) {
+                    myCode = character;
+                }
+                column++;
+            }
+        }
+
+        private void endLine() {
+            if(column > 2) {
+                consumer.round(opponentCode, myCode);
+            }
+            column = 0;
+        }
+    }
+
+    // Sums the rounds while reading
     private static class StrategyGuide {
-        private final Scanner scanner;
+        private static final ScoreTable SCORES = ScoreTable.build();
+
+        private final InputStream input;
+        private final Diagnostics diagnostics;
+        private long totalScore;
+
+        public StrategyGuide(InputStream input, Diagnostics diagnostics) {
+            this.input = input;
+            this.diagnostics = diagnostics;
+        }
+
+        public long totalScore() throws IOException {
+            RoundReader.read(input, this::addRound);
+            return totalScore;
+        }
 
-        public StrategyGuide(Scanner scanner) {
-            this.scanner = scanner;
+        private void addRound(int opponentCode, int myCode) {
+            var score = SCORES.score(opponentCode, myCode);
+            diagnostics.round(opponentCode, myCode, score);
+            totalScore += score;
         }
+    }
+
+    // Reads the guide once and sums both the "XYZ is my shape" and the "XYZ is the outcome" interpretation
+    private static class CombinedStrategyGuide {
+        private static final ScoreTable OUTCOME_CODE_SCORES = ScoreTable.buildForOutcomeCodes();
 
-        public int totalScore() {
-            return rounds().map(Round::score).mapToInt(Integer::intValue).sum();
+        private long shapeCodeTotalScore;
+        private long outcomeCodeTotalScore;
+
+        public void read(InputStream input) throws IOException {
+            RoundReader.read(input, this::addRound);
         }
 
-        private Stream<Round> rounds() {
-            var rounds = new ArrayList<Round>();
-            while (scanner.hasNextLine()) {
-                var round = Round.build(scanner.nextLine());
-                if(round != null) {
-                    rounds.add(round);
+        public long shapeCodeTotalScore() {
+            return shapeCodeTotalScore;
+        }
+
+        public long outcomeCodeTotalScore() {
+            return outcomeCodeTotalScore;
+        }
+
+        private void addRound(int opponentCode, int myCode) {
+            shapeCodeTotalScore += StrategyGuide.SCORES.score(opponentCode, myCode);
+            outcomeCodeTotalScore += OUTCOME_CODE_SCORES.score(opponentCode, myCode);
+        }
+    }
+
+    // Scores a file of fixed width "A X\n" records by memory mapping record aligned slices and summing them on a fork-join pool
+    private static class MappedStrategyGuide {
+        private static final int RECORD_SIZE = 4;
+
+        public static long totalScore(Path path) throws IOException {
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                var size = channel.size();
+                // The last record may lack its line break
+                var records = size / RECORD_SIZE + (size % RECORD_SIZE == RECORD_SIZE - 1 ? 1 : 0);
+                return ForkJoinPool.commonPool().invoke(new SliceTask(channel, 0, records));
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class SliceTask extends RecursiveTask<Long> {
+        private static final long RECORDS_PER_SLICE = 1 << 22;
+
+        private final FileChannel channel;
+        private final long firstRecord;
+        private final long endRecord;
+
+        public SliceTask(FileChannel channel, long firstRecord, long endRecord) {
+            this.channel = channel;
+            this.firstRecord = firstRecord;
+            this.endRecord = endRecord;
+        }
+
+        @Override
+        protected Long compute() {
+            if(endRecord - firstRecord <= RECORDS_PER_SLICE) {
+                return scoreSlice();
+            }
+            var middleRecord = (firstRecord + endRecord) >>> 1;
+            var firstHalf = new SliceTask(channel, firstRecord, middleRecord);
+            firstHalf.fork();
+            var secondHalfScore = new SliceTask(channel, middleRecord, endRecord).compute();
+            return firstHalf.join() + secondHalfScore;
+        }
+
+        private long scoreSlice() {
+            try {
+                var start = firstRecord * MappedStrategyGuide.RECORD_SIZE;
+                var end = Math.min(endRecord * MappedStrategyGuide.RECORD_SIZE, channel.size());
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                var score = 0L;
+                for (int i = 0; i + 2 < buffer.limit(); i += MappedStrategyGuide.RECORD_SIZE) {
+                    score += StrategyGuide.SCORES.score(buffer.get(i), buffer.get(i + 2));
                 }
+                return score;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            return rounds.stream();
+        }
+    }
+
+    // Score of all 9 possible rounds, indexed by the opponent code and my code
+    private static class ScoreTable {
+        private static final String OPPONENT_CODES = "ABC";
+        private static final String MY_CODES = "XYZ";
+
+        private final int[] scores;
+
+        private ScoreTable(int[] scores) {
+            this.scores = scores;
+        }
+
+        public static ScoreTable build() {
+            var scores = new int[OPPONENT_CODES.length() * MY_CODES.length()];
+            for (var opponentCode : OPPONENT_CODES.toCharArray()) {
+                for (var myCode : MY_CODES.toCharArray()) {
+                    var round = new Round(String.valueOf(opponentCode), String.valueOf(myCode));
+                    scores[index(opponentCode, myCode)] = round.score();
+                }
+            }
+            return new ScoreTable(scores);
+        }
+
+        // Day2b rules, XYZ is the outcome (lose, draw, win) and my shape is the one giving that outcome
+        public static ScoreTable buildForOutcomeCodes() {
+            var scores = new int[OPPONENT_CODES.length() * MY_CODES.length()];
+            for (var opponentCode : OPPONENT_CODES.toCharArray()) {
+                for (var myCode : MY_CODES.toCharArray()) {
+                    var round = new Round(String.valueOf(opponentCode), String.valueOf(myCode));
+                    var outcomeCode = MY_CODES.charAt(round.outcomeScore() / 3);
+                    scores[index(opponentCode, outcomeCode)] = round.score();
+                }
+            }
+            return new ScoreTable(scores);
+        }
+
+        public int score(int opponentCode, int myCode) {
+            return scores[index(opponentCode, myCode)];
+        }
+
+        private static int index(int opponentCode, int myCode) {
+            var opponentIndex = opponentCode - 'A';
+            var myIndex = myCode - 'X';
+            if(opponentIndex < 0 || opponentIndex > 2 || myIndex < 0 || myIndex > 2) {
+                throw new IllegalArgumentException("Non valid input '%c %c'".formatted(opponentCode, myCode));
+            }
+            return opponentIndex * 3 + myIndex;
         }
     }
 
@@ -44,16 +253,12 @@ public class Day2 {
             myShape = Shape.build(myCode);
         }
 
-        public static Round build(String line) {
-            System.out.println("line = " + line);
-            if(line.length() > 1) {
-                return new Round(line.substring(0, 1), line.substring(2, 3));
-            }
-            return null;
+        public int score() {
+            return myShape.score() + outcomeScore();
         }
 
-        public int score() {
-            return myShape.score() + myShape.outcome(opponentShape).score();
+        public int outcomeScore() {
+            return myShape.outcome(opponentShape).score();
         }
     }
 
@@ -1,35 +1,133 @@
-import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.stream.Stream;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class Day2b {
-    public static void main(String[] args) {
-        var scanner = new Scanner(System.in);
-        var guide = new StrategyGuide(scanner);
+    public static void main(String[] args) throws IOException {
+        var diagnostics = args.length > 0 && args[0].equals("trace") ? Diagnostics.PRINT_ROUNDS : Diagnostics.NONE;
+        var guide = new StrategyGuide(System.in, diagnostics);
         var totalScore = guide.totalScore();
         System.out.println("totalScore = " + totalScore);
     }
 
+    // Receives every scored round, only used when tracing the input
+    @FunctionalInterface
+    private interface Diagnostics {
+        Diagnostics NONE = (opponentCode, myCode, score) -> {};
+        Diagnostics PRINT_ROUNDS = (opponentCode, myCode, score) ->
+                System.out.println("line = %c %c, score = %d".formatted(opponentCode, myCode, score));
+
+        void round(int opponentCode, int myCode, int score);
+    }
+
+    @FunctionalInterface
+    private interface RoundConsumer {
+        void round(int opponentCode, int myCode);
+    }
+
+    // Reads the guide byte by byte and passes on the two codes of every line, only the current line's codes are kept
+    private static class RoundReader {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final RoundConsumer consumer;
+        private int column;
+        private int opponentCode;
+        private int myCode;
+
+        private RoundReader(RoundConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        public static void read(InputStream input, RoundConsumer consumer) throws IOException {
+            var reader = new RoundReader(consumer);
+            var buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    reader.consume(buffer[i]);
+                }
+            }
+            reader.endLine();
+        }
+
+        private void consume(byte character) {
+            if(character == '\n') {
+                endLine();
+            } else {
+                if(column == 0) {
+                    opponentCode = character;
+                } else if(column == 2) {
+                    myCode = character;
+                }
+                column++;
+            }
+        }
+
+        private void endLine() {
+            if(column > 2) {
+                consumer.round(opponentCode, myCode);
+            }
+            column = 0;
+        }
+    }
+
+    // Sums the rounds while reading
     private static class StrategyGuide {
-        private final Scanner scanner;
+        private static final ScoreTable SCORES = ScoreTable.build();
+
+        private final InputStream input;
+        private final Diagnostics diagnostics;
+        private long totalScore;
+
+        public StrategyGuide(InputStream input, Diagnostics diagnostics) {
+            this.input = input;
+            this.diagnostics = diagnostics;
+        }
 
-        public StrategyGuide(Scanner scanner) {
-            this.scanner = scanner;
+        public long totalScore() throws IOException {
+            RoundReader.read(input, this::addRound);
+            return totalScore;
         }
 
-        public int totalScore() {
-            return rounds().map(Round::score).mapToInt(Integer::intValue).sum();
+        private void addRound(int opponentCode, int myCode) {
+            var score = SCORES.score(opponentCode, myCode);
+            diagnostics.round(opponentCode, myCode, score);
+            totalScore += score;
+        }
+    }
+
+    // Score of all 9 possible rounds, indexed by the opponent code and my code
+    private static class ScoreTable {
+        private static final String OPPONENT_CODES = "ABC";
+        private static final String MY_CODES = "XYZ";
+
+        private final int[] scores;
+
+        private ScoreTable(int[] scores) {
+            this.scores = scores;
         }
 
-        private Stream<Round> rounds() {
-            var rounds = new ArrayList<Round>();
-            while (scanner.hasNextLine()) {
-                var round = Round.build(scanner.nextLine());
-                if(round != null) {
-                    rounds.add(round);
+        public static ScoreTable build() {
+            var scores = new int[OPPONENT_CODES.length() * MY_CODES.length()];
+            for (var opponentCode : OPPONENT_CODES.toCharArray()) {
+                for (var myCode : MY_CODES.toCharArray()) {
+                    var round = new Round(String.valueOf(opponentCode), String.valueOf(myCode));
+                    scores[index(opponentCode, myCode)] = round.score();
                 }
             }
-            return rounds.stream();
+            return new ScoreTable(scores);
+        }
+
+        public int score(int opponentCode, int myCode) {
+            return scores[index(opponentCode, myCode)];
+        }
+
+        private static int index(int opponentCode, int myCode) {
+            var opponentIndex = opponentCode - 'A';
+            var myIndex = myCode - 'X';
+            if(opponentIndex < 0 || opponentIndex > 2 || myIndex < 0 || myIndex > 2) {
+                throw new IllegalArgumentException("Non valid input '%c %c'".formatted(opponentCode, myCode));
+            }
+            return opponentIndex * 3 + myIndex;
         }
     }
 
@@ -44,14 +142,6 @@ public class Day2b {
             myShape = Shape.build(opponentShape, myCode);
         }
 
-        public static Round build(String line) {
-            System.out.println("line = " + line);
-            if(line.length() > 1) {
-                return new Round(line.substring(0, 1), line.substring(2, 3));
-            }
-            return null;
-        }
-
         public int score() {
             return myShape.score() + myShape.outcome(opponentShape).score();
         }
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class Day3 {
     public static void main(String[] args) {
@@ -64,35 +65,71 @@ public class Day3 {
     }
 
     private static class Compartment {
-        private final Collection<Item> items;
+        private final long items;
 
-        public Compartment(String itemCodes) {
-            items = itemCodes.chars().mapToObj(Item::new).toList();
+        public Compartment(CharSequence itemCodes) {
+            items = ItemSet.of(itemCodes);
         }
 
         public Item sharedWith(Compartment secondCompartment) {
-            return items.stream()
-                    .filter(myItem -> secondCompartment.items.stream().anyMatch(item -> item.equals(myItem)))
-                    .findAny()
-                    .orElseThrow();
+            return ItemSet.singleItem(items & secondCompartment.items);
         }
 
         @Override
         public String toString() {
             return "Compartment{" +
-                    "items=" + items +
+                    "items=" + ItemSet.toString(items) +
                     '}';
         }
     }
 
+    // Item sets as a long bitmask with bit N set for priority N, intersections are a bitwise and
+    private static final class ItemSet {
+        private ItemSet() {
+        }
+
+        public static long of(CharSequence itemCodes) {
+            var items = 0L;
+            for (int i = 0; i < itemCodes.length(); i++) {
+                items |= 1L << Item.priority(itemCodes.charAt(i));
+            }
+            return items;
+        }
+
+        public static Item singleItem(long items) {
+            if(items == 0) {
+                throw new NoSuchElementException("No item in set");
+            }
+            return Item.of(Long.numberOfTrailingZeros(items));
+        }
+
+        public static String toString(long items) {
+            var joiner = new StringJoiner(", ", "[", "]");
+            for (var remaining = items; remaining != 0; remaining &= remaining - 1) {
+                joiner.add(Item.of(Long.numberOfTrailingZeros(remaining)).toString());
+            }
+            return joiner.toString();
+        }
+    }
+
     private static class Item {
+        private static final Item[] ITEMS = IntStream.rangeClosed(0, 52).mapToObj(Item::new).toArray(Item[]::new);
+
         private final int priority;
 
-        public Item(int code) {
+        private Item(int priority) {
+            this.priority = priority;
+        }
+
+        public static Item of(int priority) {
+            return ITEMS[priority];
+        }
+
+        public static int priority(int code) {
             if(code >= 97) {
-                priority = getLowercasePriority(code);
+                return getLowercasePriority(code);
             } else {
-                priority = getUppercasePriority(code);
+                return getUppercasePriority(code);
             }
         }
 
@@ -117,7 +154,7 @@ public class Day3 {
 
         @Override
         public int hashCode() {
-            return Objects.hash(priority);
+            return Integer.hashCode(priority);
         }
 
         @Override
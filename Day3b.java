@@ -1,7 +1,19 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public class Day3b {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("parallel")) {
+            System.out.println("groups.sumOfPriorities() = " + MappedGroups.sumOfPriorities(Path.of(args[1])));
+            return;
+        }
         var scanner = new Scanner(System.in);
         var groups = new Groups(scanner);
         System.out.println("groups.sumOfPriorities() = " + groups.sumOfPriorities());
@@ -23,6 +35,146 @@ public class Day3b {
         }
     }
 
+    // Sums badge priorities of a memory mapped inventory with a parallel stream over its groups
+    private static class MappedGroups {
+        private static final int CHUNK_SIZE = 1 << 20;
+
+        public static long sumOfPriorities(Path path) throws IOException {
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if(channel.size() > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("%s is too large to map, %d bytes".formatted(path, channel.size()));
+                }
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                var chunkStarts = chunkStarts(buffer);
+                var spliterator = new GroupSpliterator(buffer, chunkStarts, firstLineNumbers(buffer, chunkStarts), 0, chunkStarts.length - 1);
+                return StreamSupport.intStream(spliterator, true).asLongStream().sum();
+            }
+        }
+
+        // Chunk i covers [chunkStarts[i], chunkStarts[i + 1]), the last entry is the buffer size
+        private static int[] chunkStarts(ByteBuffer buffer) {
+            var chunks = Math.max(1, (buffer.limit() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            return IntStream.rangeClosed(0, chunks).map(i -> (int) Math.min(buffer.limit(), (long) i * CHUNK_SIZE)).toArray();
+        }
+
+        // Number of lines ending before each chunk, counted in parallel and summed up in order
+        private static long[] firstLineNumbers(ByteBuffer buffer, int[] chunkStarts) {
+            var newlines = IntStream.range(0, chunkStarts.length - 1).parallel()
+                    .mapToLong(chunk -> countNewlines(buffer, chunkStarts[chunk], chunkStarts[chunk + 1]))
+                    .toArray();
+            var lineNumbers = new long[newlines.length];
+            for (int i = 1; i < newlines.length; i++) {
+                lineNumbers[i] = lineNumbers[i - 1] + newlines[i - 1];
+            }
+            return lineNumbers;
+        }
+
+        private static long countNewlines(ByteBuffer buffer, int start, int end) {
+            var newlines = 0L;
+            for (int i = start; i < end; i++) {
+                if(buffer.get(i) == '\n') {
+                    newlines++;
+                }
+            }
+            return newlines;
+        }
+    }
+
+    // Badge priority of every group starting in a range of chunks, splits by halving the chunk range
+    private static class GroupSpliterator implements Spliterator.OfInt {
+        private static final int LINES_PER_GROUP = 3;
+
+        private final ByteBuffer buffer;
+        private final int[] chunkStarts;
+        private final long[] firstLineNumbers;
+        private int chunk;
+        private final int endChunk;
+        private int position = -1;
+
+        public GroupSpliterator(ByteBuffer buffer, int[] chunkStarts, long[] firstLineNumbers, int chunk, int endChunk) {
+            this.buffer = buffer;
+            this.chunkStarts = chunkStarts;
+            this.firstLineNumbers = firstLineNumbers;
+            this.chunk = chunk;
+            this.endChunk = endChunk;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            while(chunk < endChunk) {
+                if(position < 0) {
+                    moveToFirstGroupStart();
+                }
+                if(position < chunkStarts[chunk + 1]) {
+                    var badge = -1L;
+                    for (int line = 0; line < LINES_PER_GROUP; line++) {
+                        badge &= readLine();
+                    }
+                    action.accept(ItemSet.singleItem(badge).priority());
+                    return true;
+                }
+                chunk++;
+                position = -1;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if(position >= 0 || endChunk - chunk < 2) {
+                return null;
+            }
+            var middleChunk = (chunk + endChunk) >>> 1;
+            var prefix = new GroupSpliterator(buffer, chunkStarts, firstLineNumbers, chunk, middleChunk);
+            chunk = middleChunk;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return chunkStarts[endChunk] - chunkStarts[chunk];
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+
+        // Skips the partial line and the lines belonging to a group started in an earlier chunk
+        private void moveToFirstGroupStart() {
+            position = chunkStarts[chunk];
+            var lineNumber = firstLineNumbers[chunk];
+            if(position > 0 && buffer.get(position - 1) != '\n') {
+                skipLine();
+                lineNumber++;
+            }
+            var linesToSkip = (LINES_PER_GROUP - lineNumber % LINES_PER_GROUP) % LINES_PER_GROUP;
+            for (int i = 0; i < linesToSkip; i++) {
+                skipLine();
+            }
+        }
+
+        private void skipLine() {
+            while(position < buffer.limit() && buffer.get(position++) != '\n') {
+                // Moving past the line
+            }
+        }
+
+        private long readLine() {
+            var items = 0L;
+            while(position < buffer.limit()) {
+                var code = buffer.get(position++);
+                if(code == '\n') {
+                    break;
+                }
+                if(code != '\r') {
+                    items |= 1L << Item.priority(code);
+                }
+            }
+            return items;
+        }
+    }
+
     private static class Group {
 
         private final Rucksack firstRucksack;
@@ -58,42 +210,79 @@ public class Day3b {
     }
 
     private static class Compartment {
-        private final Collection<Item> items;
+        private final long items;
 
-        public Compartment(String itemCodes) {
-            items = itemCodes.chars().mapToObj(Item::new).toList();
+        public Compartment(CharSequence itemCodes) {
+            items = ItemSet.of(itemCodes);
         }
 
-        public Compartment(Collection<Item> items) {
+        public Compartment(long items) {
             this.items = items;
         }
 
         public Compartment sharedWith(Compartment secondCompartment) {
-            return new Compartment(items.stream()
-                    .filter(myItem -> secondCompartment.items.stream().anyMatch(item -> item.equals(myItem)))
-                    .toList());
+            return new Compartment(items & secondCompartment.items);
         }
 
         @Override
         public String toString() {
             return "Compartment{" +
-                    "items=" + items +
+                    "items=" + ItemSet.toString(items) +
                     '}';
         }
 
         public Item singleItem() {
-            return items.stream().findAny().orElseThrow();
+            return ItemSet.singleItem(items);
+        }
+    }
+
+    // Item sets as a long bitmask with bit N set for priority N, intersections are a bitwise and
+    private static final class ItemSet {
+        private ItemSet() {
+        }
+
+        public static long of(CharSequence itemCodes) {
+            var items = 0L;
+            for (int i = 0; i < itemCodes.length(); i++) {
+                items |= 1L << Item.priority(itemCodes.charAt(i));
+            }
+            return items;
+        }
+
+        public static Item singleItem(long items) {
+            if(items == 0) {
+                throw new NoSuchElementException("No item in set");
+            }
+            return Item.of(Long.numberOfTrailingZeros(items));
+        }
+
+        public static String toString(long items) {
+            var joiner = new StringJoiner(", ", "[", "]");
+            for (var remaining = items; remaining != 0; remaining &= remaining - 1) {
+                joiner.add(Item.of(Long.numberOfTrailingZeros(remaining)).toString());
+            }
+            return joiner.toString();
         }
     }
 
     private static class Item {
+        private static final Item[] ITEMS = IntStream.rangeClosed(0, 52).mapToObj(Item::new).toArray(Item[]::new);
+
         private final int priority;
 
-        public Item(int code) {
+        private Item(int priority) {
+            this.priority = priority;
+        }
+
+        public static Item of(int priority) {
+            return ITEMS[priority];
+        }
+
+        public static int priority(int code) {
             if(code >= 97) {
-                priority = getLowercasePriority(code);
+                return getLowercasePriority(code);
             } else {
-                priority = getUppercasePriority(code);
+                return getUppercasePriority(code);
             }
         }
 
@@ -118,7 +307,7 @@ public class Day3b {
 
         @Override
         public int hashCode() {
-            return Objects.hash(priority);
+            return Integer.hashCode(priority);
         }
 
         @Override
@@ -1,87 +1,312 @@
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 public class Day4 {
-    public static void main(String[] args) {
-        var scanner = new Scanner(System.in);
-        var pairs = Pairs.build(scanner);
-        System.out.println("pairs.amountWithRangeFullyContainingTheOther() = " + pairs.amountWithRangeFullyContainingTheOther());
-        System.out.println("pairs.amountWithRangeOverlappingTheOther() = " + pairs.amountWithRangeOverlappingTheOther());
+    public static void main(String[] args) throws IOException {
+        var pairs = Pairs.build(System.in);
+        var amounts = pairs.amountsMatching(PairPredicate.FULLY_CONTAINING, PairPredicate.OVERLAPPING);
+        System.out.println("pairs.amountWithRangeFullyContainingTheOther() = " + amounts[0]);
+        System.out.println("pairs.amountWithRangeOverlappingTheOther() = " + amounts[1]);
+        if(args.length == 0) {
+            return;
+        }
+        var index = pairs.intervalIndex();
+        if(args[0].equals("sections")) {
+            System.out.println("index.sectionsCovered() = " + index.sectionsCovered());
+        } else if(args[0].equals("covering")) {
+            var section = Integer.parseInt(args[1]);
+            System.out.println("index.rangesCovering(%d) = %d".formatted(section, index.rangesCovering(section)));
+        } else if(args[0].equals("overlapping")) {
+            var beginning = Integer.parseInt(args[1]);
+            var end = Integer.parseInt(args[2]);
+            System.out.println("index.pairsOverlapping(%d, %d) = %s".formatted(beginning, end,
+                    Arrays.toString(index.pairsOverlapping(beginning, end))));
+        } else {
+            throw new IllegalArgumentException("Non valid mode '%s'".formatted(args[0]));
+        }
     }
 
+    // Range bounds stored column by column, pair i is [firstBeginnings[i], firstEnds[i]] and [secondBeginnings[i], secondEnds[i]]
     private static class Pairs {
-        private final Collection<Pair> pairs;
+        private final int[] firstBeginnings;
+        private final int[] firstEnds;
+        private final int[] secondBeginnings;
+        private final int[] secondEnds;
+        private final int size;
 
-        public Pairs(Collection<Pair> pairs) {
-            this.pairs = pairs;
+        public Pairs(int[] firstBeginnings, int[] firstEnds, int[] secondBeginnings, int[] secondEnds, int size) {
+            this.firstBeginnings = firstBeginnings;
+            this.firstEnds = firstEnds;
+            this.secondBeginnings = secondBeginnings;
+            this.secondEnds = secondEnds;
+            this.size = size;
         }
 
-        public static Pairs build(Scanner scanner) {
-            var pairs = new ArrayList<Pair>();
-            while(scanner.hasNextLine()) {
-                var line = scanner.nextLine();
-                pairs.add(Pair.build(line));
-            }
-            return new Pairs(pairs);
+        public static Pairs build(InputStream input) throws IOException {
+            var parser = new PairsParser();
+            parser.parse(input);
+            return parser.toPairs();
         }
 
-        public int amountWithRangeFullyContainingTheOther() {
-            return pairs.stream().filter(Pair::haveRangeFullyContainingOther).toList().size();
+        public IntervalIndex intervalIndex() {
+            return IntervalIndex.build(firstBeginnings, firstEnds, secondBeginnings, secondEnds, size);
         }
 
-        public int amountWithRangeOverlappingTheOther() {
-            return pairs.stream().filter(Pair::haveRangeOverlappingOther).toList().size();
+        // Amount of pairs matching each predicate. The built in predicates are counted together by the branch free
+        // kernel, any other predicates share one traversal of their own.
+        public int[] amountsMatching(PairPredicate... predicates) {
+            var amounts = new int[predicates.length];
+            var builtInAmounts = Arrays.stream(predicates).anyMatch(PairPredicate::isBuiltIn)
+                    ? RangeKernel.countBuiltIns(firstBeginnings, firstEnds, secondBeginnings, secondEnds, size)
+                    : null;
+            var custom = IntStream.range(0, predicates.length).filter(j -> !predicates[j].isBuiltIn()).toArray();
+            for (int j = 0; j < predicates.length; j++) {
+                if(predicates[j] == PairPredicate.FULLY_CONTAINING) {
+                    amounts[j] = builtInAmounts[RangeKernel.FULLY_CONTAINING];
+                } else if(predicates[j] == PairPredicate.OVERLAPPING) {
+                    amounts[j] = builtInAmounts[RangeKernel.OVERLAPPING];
+                }
+            }
+            if(custom.length > 0) {
+                for (int i = 0; i < size; i++) {
+                    for (var j : custom) {
+                        if(predicates[j].test(firstBeginnings[i], firstEnds[i], secondBeginnings[i], secondEnds[i])) {
+                            amounts[j]++;
+                        }
+                    }
+                }
+            }
+            return amounts;
         }
     }
 
-    private static class Pair {
-        private final Range firstRange;
-        private final Range secondRange;
+    // Every range of every pair sorted by beginning, with the largest end of each implicit subtree for overlap queries
+    private static class IntervalIndex {
+        private final int[] beginnings;
+        private final int[] ends;
+        private final int[] pairIndices;
+        private final int[] maxEnds;
+        private final int[] sortedEnds;
+        private final long sectionsCovered;
+
+        private IntervalIndex(int[] beginnings, int[] ends, int[] pairIndices, int[] sortedEnds) {
+            this.beginnings = beginnings;
+            this.ends = ends;
+            this.pairIndices = pairIndices;
+            this.sortedEnds = sortedEnds;
+            maxEnds = new int[beginnings.length];
+            buildMaxEnds(0, beginnings.length);
+            sectionsCovered = unionLength();
+        }
+
+        public static IntervalIndex build(int[] firstBeginnings, int[] firstEnds, int[] secondBeginnings, int[] secondEnds, int size) {
+            // Range r belongs to pair r / 2, sorting on beginning then range number keeps the order stable
+            var keys = new long[size * 2];
+            for (int i = 0; i < size; i++) {
+                keys[i * 2] = (long) firstBeginnings[i] << 32 | i * 2;
+                keys[i * 2 + 1] = (long) secondBeginnings[i] << 32 | (i * 2 + 1);
+            }
+            Arrays.sort(keys);
+            var beginnings = new int[keys.length];
+            var ends = new int[keys.length];
+            var pairIndices = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                var range = (int) keys[i];
+                var pair = range / 2;
+                beginnings[i] = (int) (keys[i] >>> 32);
+                ends[i] = range % 2 == 0 ? firstEnds[pair] : secondEnds[pair];
+                pairIndices[i] = pair;
+            }
+            var sortedEnds = ends.clone();
+            Arrays.sort(sortedEnds);
+            return new IntervalIndex(beginnings, ends, pairIndices, sortedEnds);
+        }
+
+        // Amount of ranges containing the section, the ranges begun at or before it minus those already ended
+        public int rangesCovering(int section) {
+            return upperBound(beginnings, section) - upperBound(sortedEnds, section - 1);
+        }
 
-        public Pair(Range firstRange, Range secondRange) {
-            this.firstRange = firstRange;
-            this.secondRange = secondRange;
+        // Indices of the pairs with at least one range overlapping [beginning, end], in increasing order
+        public int[] pairsOverlapping(int beginning, int end) {
+            var matches = IntStream.builder();
+            collectOverlapping(0, beginnings.length, beginning, end, matches);
+            return matches.build().sorted().distinct().toArray();
         }
 
-        public static Pair build(String line) {
-            var rangeLine = line.split(",");
-            return new Pair(Range.build(rangeLine[0]), Range.build(rangeLine[1]));
+        public long sectionsCovered() {
+            return sectionsCovered;
         }
 
-        public boolean haveRangeFullyContainingOther() {
-            return firstRange.contains(secondRange) || secondRange.contains(firstRange);
+        // Subtrees ending before the queried beginning are skipped, as is everything right of a range beginning after its end
+        private void collectOverlapping(int low, int high, int beginning, int end, IntStream.Builder matches) {
+            if(low >= high) {
+                return;
+            }
+            var middle = (low + high) >>> 1;
+            if(maxEnds[middle] < beginning) {
+                return;
+            }
+            collectOverlapping(low, middle, beginning, end, matches);
+            if(beginnings[middle] > end) {
+                return;
+            }
+            if(ends[middle] >= beginning) {
+                matches.add(pairIndices[middle]);
+            }
+            collectOverlapping(middle + 1, high, beginning, end, matches);
         }
 
-        public boolean haveRangeOverlappingOther() {
-            return firstRange.overlapsToRight(secondRange) || secondRange.overlapsToRight(firstRange);
+        private int buildMaxEnds(int low, int high) {
+            if(low >= high) {
+                return Integer.MIN_VALUE;
+            }
+            var middle = (low + high) >>> 1;
+            maxEnds[middle] = Math.max(ends[middle], Math.max(buildMaxEnds(low, middle), buildMaxEnds(middle + 1, high)));
+            return maxEnds[middle];
+        }
+
+        private long unionLength() {
+            var length = 0L;
+            var coveredUpTo = Long.MIN_VALUE;
+            for (int i = 0; i < beginnings.length; i++) {
+                var from = Math.max(beginnings[i], coveredUpTo + 1);
+                if(ends[i] >= from) {
+                    length += ends[i] - from + 1;
+                }
+                coveredUpTo = Math.max(coveredUpTo, ends[i]);
+            }
+            return length;
+        }
+
+        // Amount of values less than or equal to the given value in a sorted array
+        private static int upperBound(int[] sorted, int value) {
+            var low = 0;
+            var high = sorted.length;
+            while(low < high) {
+                var middle = (low + high) >>> 1;
+                if(sorted[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
         }
     }
 
-    private static class Range {
+    @FunctionalInterface
+    private interface PairPredicate {
+        PairPredicate FULLY_CONTAINING = Pair::haveRangeFullyContainingOther;
+        PairPredicate OVERLAPPING = Pair::haveRangeOverlappingOther;
 
-        private final int beginning;
-        private final int end;
+        boolean test(int firstBeginning, int firstEnd, int secondBeginning, int secondEnd);
 
-        public Range(int beginning, int end) {
-            this.beginning = beginning;
-            this.end = end;
+        default boolean isBuiltIn() {
+            return this == FULLY_CONTAINING || this == OVERLAPPING;
+        }
+    }
+
+    // Branch free forms of the Pair checks that the JIT can vectorize, section numbers are never negative so the
+    // sign bit of a difference tells which bound is smaller. Pair's static checks are the scalar reference.
+    private static class RangeKernel {
+        public static final int FULLY_CONTAINING = 0;
+        public static final int OVERLAPPING = 1;
+
+        // Both built in amounts from one pass, indexed by FULLY_CONTAINING and OVERLAPPING
+        public static int[] countBuiltIns(int[] firstBeginnings, int[] firstEnds, int[] secondBeginnings, int[] secondEnds, int size) {
+            var fullyContaining = 0;
+            var overlapping = 0;
+            for (int i = 0; i < size; i++) {
+                var firstContainsSecond = (secondBeginnings[i] - firstBeginnings[i]) | (firstEnds[i] - secondEnds[i]);
+                var secondContainsFirst = (firstBeginnings[i] - secondBeginnings[i]) | (secondEnds[i] - firstEnds[i]);
+                fullyContaining += ((firstContainsSecond & secondContainsFirst) >>> 31) ^ 1;
+                var firstContainsSecondBeginning = (secondBeginnings[i] - firstBeginnings[i]) | (firstEnds[i] - secondBeginnings[i]);
+                var secondContainsFirstBeginning = (firstBeginnings[i] - secondBeginnings[i]) | (secondEnds[i] - firstBeginnings[i]);
+                overlapping += ((firstContainsSecondBeginning & secondContainsFirstBeginning) >>> 31) ^ 1;
+            }
+            return new int[] {fullyContaining, overlapping};
+        }
+    }
+
+    // Reads "a-b,c-d" lines byte by byte, every fourth number completes a pair
+    private static class PairsParser {
+        private static final int BUFFER_SIZE = 1 << 16;
+        private static final int NUMBERS_PER_PAIR = 4;
+
+        private int[][] columns = new int[NUMBERS_PER_PAIR][1024];
+        private int size;
+        private int column;
+        private int number;
+        private boolean hasDigits;
+
+        public void parse(InputStream input) throws IOException {
+            var buffer = new byte[BUFFER_SIZE];
+            int read;
+            while((read = input.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    consume(buffer[i]);
+                }
+            }
+            endNumber();
+            if(column != 0) {
+                throw new IllegalArgumentException("Incomplete pair at the end of the input");
+            }
+        }
+
+        public Pairs toPairs() {
+            return new Pairs(columns[0], columns[1], columns[2], columns[3], size);
         }
 
-        public static Range build(String line) {
-            var range = line.split("-");
-            return new Range(Integer.parseInt(range[0]), Integer.parseInt(range[1]));
+        private void consume(byte character) {
+            if(character >= '0' && character <= '9') {
+                number = number * 10 + (character - '0');
+                hasDigits = true;
+            } else {
+                endNumber();
+            }
         }
 
-        public boolean contains(Range otherRange) {
-            return beginning <= otherRange.beginning && end >= otherRange.end;
+        private void endNumber() {
+            if(!hasDigits) {
+                return;
+            }
+            if(size == columns[column].length) {
+                for (int i = 0; i < NUMBERS_PER_PAIR; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], size * 2);
+                }
+            }
+            columns[column][size] = number;
+            column++;
+            if(column == NUMBERS_PER_PAIR) {
+                column = 0;
+                size++;
+            }
+            number = 0;
+            hasDigits = false;
         }
+    }
 
-        public boolean overlapsToRight(Range otherRange) {
-            return contains(otherRange.beginning);
+    private static class Pair {
+        public static boolean haveRangeFullyContainingOther(int firstBeginning, int firstEnd, int secondBeginning, int secondEnd) {
+            return Range.contains(firstBeginning, firstEnd, secondBeginning, secondEnd)
+                    || Range.contains(secondBeginning, secondEnd, firstBeginning, firstEnd);
+        }
+
+        public static boolean haveRangeOverlappingOther(int firstBeginning, int firstEnd, int secondBeginning, int secondEnd) {
+            return Range.contains(firstBeginning, firstEnd, secondBeginning)
+                    || Range.contains(secondBeginning, secondEnd, firstBeginning);
+        }
+    }
+
+    private static class Range {
+        private static boolean contains(int beginning, int end, int otherBeginning, int otherEnd) {
+            return beginning <= otherBeginning && end >= otherEnd;
         }
 
-        private boolean contains(int number) {
+        private static boolean contains(int beginning, int end, int number) {
             return beginning <= number && end >= number;
         }
     }
@@ -1,78 +1,162 @@
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
 
 public class Day5 {
+    private static final int CHECKPOINT_INTERVAL = 64;
+
     public static void main(String[] args) {
-        var stacks = Stacks.build(new Scanner(System.in), 9);
-        System.out.println("stacks.topCrates() = " + stacks.topCrates());
+        var stackFactory = args.length > 0 && args[0].equals("rope")
+                ? (IntFunction<CrateStack>) CrateStack.RopeCrateStack::new
+                : (IntFunction<CrateStack>) CrateStack.ArrayCrateStack::new;
+        var drawing = Drawing.read(new Scanner(System.in), stackFactory);
+        System.out.println("stacks9000.topCrates() = " + drawing.run(CrateMover.CRATE_MOVER_9000).topCrates());
+        System.out.println("stacks9001.topCrates() = " + drawing.run(CrateMover.CRATE_MOVER_9001).topCrates());
+        var afterIndex = Arrays.asList(args).indexOf("after");
+        if(afterIndex >= 0) {
+            var move = Integer.parseInt(args[afterIndex + 1]);
+            var history9000 = drawing.record(CrateMover.CRATE_MOVER_9000, CHECKPOINT_INTERVAL);
+            var history9001 = drawing.record(CrateMover.CRATE_MOVER_9001, CHECKPOINT_INTERVAL);
+            System.out.println("stacks9000.after(%d).topCrates() = %s".formatted(move, history9000.stacksAfter(move).topCrates()));
+            System.out.println("stacks9001.after(%d).topCrates() = %s".formatted(move, history9001.stacksAfter(move).topCrates()));
+        }
     }
 
     enum InputState {
         CRATES,
         SEPARATION_LINE,
-        MOVES,
-        ADVANCED_MOVES
+        MOVES
     }
 
-    private static class Stacks {
-        private final Collection<CrateStack> stacks;
+    enum CrateMover {
+        CRATE_MOVER_9000 {
+            @Override
+            public void move(CrateStack source, CrateStack target, int amount) {
+                source.moveOneByOneTo(target, amount);
+            }
+        },
+        CRATE_MOVER_9001 {
+            @Override
+            public void move(CrateStack source, CrateStack target, int amount) {
+                source.moveAllAtOnceTo(target, amount);
+            }
+        };
 
-        public Stacks(Collection<CrateStack> stacks) {
-            this.stacks = stacks;
+        public abstract void move(CrateStack source, CrateStack target, int amount);
+    }
+
+    // The starting stacks and the compiled moves, read once and run with any crate mover
+    private static class Drawing {
+        private final Stacks startingStacks;
+        private final MoveProgram program;
+
+        public Drawing(Stacks startingStacks, MoveProgram program) {
+            this.startingStacks = startingStacks;
+            this.program = program;
         }
 
-        public static Stacks build(Scanner scanner, int numberOfStacks) {
-            var stacks = createStacks(numberOfStacks);
+        // The number of stacks is taken from the label line below the crates
+        public static Drawing read(Scanner scanner, IntFunction<CrateStack> stackFactory) {
+            var rows = new ArrayList<Row>();
+            Stacks startingStacks = null;
+            var program = new MoveProgram();
             var state = InputState.CRATES;
             while(scanner.hasNextLine()) {
+                var line = scanner.nextLine();
                 switch (state) {
                     case CRATES -> {
-                        var row = Row.build(scanner.nextLine());
+                        var row = Row.build(line);
                         if (row != null) {
-                            stacks.forEach(stack -> stack.push(row.getCrate(stack.getIndex())));
+                            rows.add(row);
                         } else {
-                            stacks.forEach(CrateStack::reverseCrates);
+                            startingStacks = Stacks.build(rows, numberOfLabels(line), stackFactory);
                             state = InputState.SEPARATION_LINE;
                         }
                     }
-                    case SEPARATION_LINE -> {
-                        scanner.nextLine();
-                        state = InputState.ADVANCED_MOVES;
-                    }
+                    case SEPARATION_LINE -> state = InputState.MOVES;
                     case MOVES -> {
-                        var move = Move.build(scanner.nextLine());
-                        for (int i = 0; i < move.amount(); i++) {
-                            var crate = stacks.get(move.source()).pop();
-                            stacks.get(move.target()).push(crate);
-                        }
-                    }
-                    case ADVANCED_MOVES -> {
-                        var move = Move.build(scanner.nextLine());
-                        var temp = new CrateStack(0);
-                        for (int i = 0; i < move.amount(); i++) {
-                            var crate = stacks.get(move.source()).pop();
-                            temp.push(crate);
-                        }
-                        for (int i = 0; i < move.amount(); i++) {
-                            var crate = temp.pop();
-                            stacks.get(move.target()).push(crate);
+                        if(!line.isBlank()) {
+                            program.append(Move.build(line));
                         }
                     }
                 }
             }
-            return new Stacks(stacks);
+            if(startingStacks == null) {
+                throw new IllegalArgumentException("No stack labels found in the drawing");
+            }
+            return new Drawing(startingStacks, program);
+        }
+
+        public Stacks run(CrateMover crateMover) {
+            var stacks = startingStacks.copy();
+            program.runOn(stacks.stacks, crateMover, 0, program.size());
+            return stacks;
+        }
+
+        // Only needed for queries on the stacks part way through the moves
+        public MoveHistory record(CrateMover crateMover, int checkpointInterval) {
+            return MoveHistory.record(startingStacks, program, crateMover, checkpointInterval);
+        }
+
+        private static int numberOfLabels(String line) {
+            var labels = 0;
+            var inLabel = false;
+            for (int i = 0; i < line.length(); i++) {
+                var isLabelCharacter = !Character.isWhitespace(line.charAt(i));
+                if(isLabelCharacter && !inLabel) {
+                    labels++;
+                }
+                inLabel = isLabelCharacter;
+            }
+            return labels;
+        }
+    }
+
+    private static class Stacks {
+        private final List<CrateStack> stacks;
+
+        public Stacks(List<CrateStack> stacks) {
+            this.stacks = stacks;
         }
 
-        private static ArrayList<CrateStack> createStacks(int numberOfStacks) {
+        // Rows are given top row first
+        public static Stacks build(List<Row> rows, int numberOfStacks, IntFunction<CrateStack> stackFactory) {
+            var stacks = new Stacks(createStacks(numberOfStacks, stackFactory));
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                var row = rows.get(i);
+                stacks.stacks.forEach(stack -> stack.push(row.getCrate(stack.getIndex())));
+            }
+            return stacks;
+        }
+
+        public Stacks copy() {
+            return new Stacks(new ArrayList<>(stacks.stream().map(CrateStack::copy).toList()));
+        }
+
+        public Stacks toRopes() {
+            var ropes = new ArrayList<CrateStack>();
+            for (var stack : stacks) {
+                var rope = new CrateStack.RopeCrateStack(stack.getIndex());
+                for (var crate : stack.toString().toCharArray()) {
+                    rope.push(crate);
+                }
+                ropes.add(rope);
+            }
+            return new Stacks(ropes);
+        }
+
+        private static ArrayList<CrateStack> createStacks(int numberOfStacks, IntFunction<CrateStack> stackFactory) {
             var stacks = new ArrayList<CrateStack>();
             for (int i = 0; i < numberOfStacks; i++) {
-                stacks.add(new CrateStack(i));
+                stacks.add(stackFactory.apply(i));
             }
             return stacks;
         }
 
         public String topCrates() {
-            return stacks.stream().map(stack -> stack.pop().getCode()).collect(Collectors.joining());
+            var builder = new StringBuilder();
+            stacks.stream().filter(stack -> stack.size() > 0).forEach(stack -> builder.append(stack.top()));
+            return builder.toString();
         }
 
         @Override
@@ -99,8 +183,9 @@ public class Day5 {
             return null;
         }
 
-        public Crate getCrate(int stackIndex) {
-            return Crate.build(line.substring(stringIndex(stackIndex), stringIndex(stackIndex) + 1));
+        public char getCrate(int stackIndex) {
+            var index = stringIndex(stackIndex);
+            return index < line.length() ? line.charAt(index) : CrateStack.NO_CRATE;
         }
 
         private int stringIndex(int index) {
@@ -108,11 +193,12 @@ public class Day5 {
         }
     }
 
-    private static class CrateStack {
+    private static abstract class CrateStack {
+        public static final char NO_CRATE = ' ';
+
         private final int index;
-        private Stack<Crate> stack = new Stack<>();
 
-        public CrateStack(int index) {
+        protected CrateStack(int index) {
             this.index = index;
         }
 
@@ -120,46 +206,353 @@ public class Day5 {
             return index;
         }
 
-        public void push(Crate crate) {
-            if(crate != null) {
-                stack.push(crate);
+        public abstract CrateStack copy();
+
+        public abstract int size();
+
+        // Pushes the crate unless it is NO_CRATE
+        public abstract void push(char crate);
+
+        public abstract char top();
+
+        // CrateMover 9000, the moved block ends up upside down on the target
+        public abstract void moveOneByOneTo(CrateStack target, int amount);
+
+        // CrateMover 9001, the moved block keeps its order
+        public abstract void moveAllAtOnceTo(CrateStack target, int amount);
+
+        protected void checkAmount(int amount) {
+            if(amount > size()) {
+                throw new IllegalArgumentException("Can not move %d crates from a stack of %d".formatted(amount, size()));
             }
         }
 
-        public void reverseCrates() {
-            var temp = new java.util.Stack<Crate>();
-            while(!stack.empty()) {
-                temp.add(stack.pop());
+        // Blocks are only moved between stacks of the same implementation
+        protected <T extends CrateStack> T sameKind(CrateStack target, Class<T> kind) {
+            if(!kind.isInstance(target)) {
+                throw new IllegalArgumentException("Can not move crates from %s to %s".formatted(getClass().getSimpleName(), target.getClass().getSimpleName()));
             }
-            stack = temp;
+            return kind.cast(target);
         }
 
-        public Crate pop() {
-            return stack.pop();
+        protected void checkNotEmpty() {
+            if(size() == 0) {
+                throw new EmptyStackException();
+            }
         }
 
-        @Override
-        public String toString() {
-            return stack.stream().map(Crate::getCode).collect(Collectors.joining(""));
+        // Crates as chars in a growable array, the last crate is the top of the stack
+        private static class ArrayCrateStack extends CrateStack {
+            private char[] crates = new char[16];
+            private int size;
+
+            public ArrayCrateStack(int index) {
+                super(index);
+            }
+
+            @Override
+            public CrateStack copy() {
+                var copy = new ArrayCrateStack(getIndex());
+                copy.crates = Arrays.copyOf(crates, Math.max(size, 1));
+                copy.size = size;
+                return copy;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void push(char crate) {
+                if(crate != NO_CRATE) {
+                    ensureCapacity(size + 1);
+                    crates[size++] = crate;
+                }
+            }
+
+            @Override
+            public char top() {
+                checkNotEmpty();
+                return crates[size - 1];
+            }
+
+            @Override
+            public void moveOneByOneTo(CrateStack target, int amount) {
+                moveBlockTo(sameKind(target, ArrayCrateStack.class), amount, true);
+            }
+
+            @Override
+            public void moveAllAtOnceTo(CrateStack target, int amount) {
+                moveBlockTo(sameKind(target, ArrayCrateStack.class), amount, false);
+            }
+
+            private void moveBlockTo(ArrayCrateStack target, int amount, boolean reversed) {
+                checkAmount(amount);
+                // Crates popped and pushed back onto the same stack leave it as it was, with either crate mover
+                if(target == this) {
+                    return;
+                }
+                target.ensureCapacity(target.size + amount);
+                System.arraycopy(crates, size - amount, target.crates, target.size, amount);
+                size -= amount;
+                target.size += amount;
+                if(reversed) {
+                    reverse(target.crates, target.size - amount, target.size);
+                }
+            }
+
+            private void ensureCapacity(int capacity) {
+                if(capacity > crates.length) {
+                    crates = Arrays.copyOf(crates, Math.max(capacity, crates.length * 2));
+                }
+            }
+
+            private static void reverse(char[] crates, int from, int to) {
+                for (int i = from, j = to - 1; i < j; i++, j--) {
+                    var crate = crates[i];
+                    crates[i] = crates[j];
+                    crates[j] = crate;
+                }
+            }
+
+            @Override
+            public String toString() {
+                return new String(crates, 0, size);
+            }
+        }
+
+        // Crates in a persistent implicit treap ordered bottom to top, any block is split off and joined in O(log n).
+        // Nodes are never changed once built, so a copy shares the whole tree with the original.
+        private static class RopeCrateStack extends CrateStack {
+            private Node root;
+
+            public RopeCrateStack(int index) {
+                super(index);
+            }
+
+            @Override
+            public CrateStack copy() {
+                var copy = new RopeCrateStack(getIndex());
+                copy.root = root;
+                return copy;
+            }
+
+            @Override
+            public int size() {
+                return Node.size(root);
+            }
+
+            @Override
+            public void push(char crate) {
+                if(crate != NO_CRATE) {
+                    root = Node.merge(root, new Node(crate));
+                }
+            }
+
+
+            @Override
+            public char top() {
+                checkNotEmpty();
+                return Node.crateAt(root, size() - 1);
+            }
+
+            @Override
+            public void moveOneByOneTo(CrateStack target, int amount) {
+                moveBlockTo(sameKind(target, RopeCrateStack.class), amount, true);
+            }
+
+            @Override
+            public void moveAllAtOnceTo(CrateStack target, int amount) {
+                moveBlockTo(sameKind(target, RopeCrateStack.class), amount, false);
+            }
+
+            private void moveBlockTo(RopeCrateStack target, int amount, boolean reversed) {
+                checkAmount(amount);
+                if(target == this) {
+                    return;
+                }
+                var parts = Node.split(root, size() - amount);
+                root = parts[0];
+                target.root = Node.merge(target.root, reversed ? Node.reverse(parts[1]) : parts[1]);
+            }
+
+            @Override
+            public String toString() {
+                var builder = new StringBuilder(size());
+                Node.appendTo(root, builder);
+                return builder.toString();
+            }
+
+            private static class Node {
+                private final char crate;
+                private final int priority;
+                private final int size;
+                // The children still have to be swapped and reversed, done when a new node is built from this one
+                private final boolean reversed;
+                private final Node left;
+                private final Node right;
+
+                public Node(char crate) {
+                    this(crate, ThreadLocalRandom.current().nextInt(), false, null, null);
+                }
+
+                private Node(char crate, int priority, boolean reversed, Node left, Node right) {
+                    this.crate = crate;
+                    this.priority = priority;
+                    this.reversed = reversed;
+                    this.left = left;
+                    this.right = right;
+                    this.size = 1 + size(left) + size(right);
+                }
+
+                public static int size(Node node) {
+                    return node == null ? 0 : node.size;
+                }
+
+                public static Node reverse(Node node) {
+                    return node == null ? null : new Node(node.crate, node.priority, !node.reversed, node.left, node.right);
+                }
+
+                // Both trees are kept in order, every crate of the left tree ends up below the right tree
+                public static Node merge(Node left, Node right) {
+                    if(left == null) {
+                        return right;
+                    }
+                    if(right == null) {
+                        return left;
+                    }
+                    if(left.priority > right.priority) {
+                        left = left.pushDown();
+                        return left.withChildren(left.left, merge(left.right, right));
+                    }
+                    right = right.pushDown();
+                    return right.withChildren(merge(left, right.left), right.right);
+                }
+
+                // The first count crates and the rest
+                public static Node[] split(Node node, int count) {
+                    if(node == null) {
+                        return new Node[] {null, null};
+                    }
+                    node = node.pushDown();
+                    if(size(node.left) >= count) {
+                        var parts = split(node.left, count);
+                        return new Node[] {parts[0], node.withChildren(parts[1], node.right)};
+                    }
+                    var parts = split(node.right, count - size(node.left) - 1);
+                    return new Node[] {node.withChildren(node.left, parts[0]), parts[1]};
+                }
+
+                // Follows pending reversals on the way down instead of building pushed down nodes
+                public static char crateAt(Node node, int position) {
+                    var reversed = false;
+                    while(true) {
+                        reversed ^= node.reversed;
+                        var lower = reversed ? node.right : node.left;
+                        var upper = reversed ? node.left : node.right;
+                        var lowerSize = size(lower);
+                        if(position < lowerSize) {
+                            node = lower;
+                        } else if(position == lowerSize) {
+                            return node.crate;
+                        } else {
+                            position -= lowerSize + 1;
+                            node = upper;
+                        }
+                    }
+                }
+
+                public static void appendTo(Node node, StringBuilder builder) {
+                    appendTo(node, false, builder);
+                }
+
+                private static void appendTo(Node node, boolean reversed, StringBuilder builder) {
+                    if(node != null) {
+                        reversed ^= node.reversed;
+                        appendTo(reversed ? node.right : node.left, reversed, builder);
+                        builder.append(node.crate);
+                        appendTo(reversed ? node.left : node.right, reversed, builder);
+                    }
+                }
+
+                private Node pushDown() {
+                    return reversed ? new Node(crate, priority, false, reverse(right), reverse(left)) : this;
+                }
+
+                private Node withChildren(Node left, Node right) {
+                    return new Node(crate, priority, false, left, right);
+                }
+            }
         }
     }
 
-    private static class Crate {
-        private final String code;
+    // Moves compiled to (amount, source index, target index) triples so they can be replayed without parsing
+    private static class MoveProgram {
+        private static final int INSTRUCTION_SIZE = 3;
 
-        public Crate(String code) {
-            this.code = code;
+        private int[] instructions = new int[INSTRUCTION_SIZE * 64];
+        private int size;
+
+        public void append(Move move) {
+            if(INSTRUCTION_SIZE * (size + 1) > instructions.length) {
+                instructions = Arrays.copyOf(instructions, instructions.length * 2);
+            }
+            var offset = INSTRUCTION_SIZE * size++;
+            instructions[offset] = move.amount();
+            instructions[offset + 1] = move.source();
+            instructions[offset + 2] = move.target();
         }
 
-        public static Crate build(String code) {
-            if(!code.equals(" ")) {
-                return new Crate(code);
+        public int size() {
+            return size;
+        }
+
+        // Runs the moves from index first up to, but not including, index end
+        public void runOn(List<CrateStack> stacks, CrateMover crateMover, int first, int end) {
+            for (int offset = INSTRUCTION_SIZE * first; offset < INSTRUCTION_SIZE * end; offset += INSTRUCTION_SIZE) {
+                crateMover.move(stacks.get(instructions[offset + 1]), stacks.get(instructions[offset + 2]), instructions[offset]);
             }
-            return null;
+        }
+    }
+
+    // Stacks saved every interval moves as persistent rope stacks. A saved rope is never changed, later moves build new
+    // nodes along their paths, so a checkpoint only holds one root per stack and shares all other nodes.
+    private static class MoveHistory {
+        private final MoveProgram program;
+        private final CrateMover crateMover;
+        private final int interval;
+        private final List<Stacks> checkpoints = new ArrayList<>();
+
+        private MoveHistory(MoveProgram program, CrateMover crateMover, int interval) {
+            if(interval < 1) {
+                throw new IllegalArgumentException("Checkpoint interval must be positive, was " + interval);
+            }
+            this.program = program;
+            this.crateMover = crateMover;
+            this.interval = interval;
         }
 
-        public String getCode() {
-            return code;
+        // Runs the whole program on rope copies of the starting stacks, saving a checkpoint before every interval moves
+        public static MoveHistory record(Stacks startingStacks, MoveProgram program, CrateMover crateMover, int interval) {
+            var history = new MoveHistory(program, crateMover, interval);
+            var stacks = startingStacks.toRopes();
+            for (int first = 0; first < program.size(); first += interval) {
+                history.checkpoints.add(stacks.copy());
+                program.runOn(stacks.stacks, crateMover, first, Math.min(first + interval, program.size()));
+            }
+            history.checkpoints.add(stacks);
+            return history;
+        }
+
+        public Stacks stacksAfter(int moves) {
+            if(moves < 0 || moves > program.size()) {
+                throw new IllegalArgumentException("Move %d is outside of 0..%d".formatted(moves, program.size()));
+            }
+            var checkpointIndex = Math.min(moves / interval, checkpoints.size() - 1);
+            var stacks = checkpoints.get(checkpointIndex).copy();
+            program.runOn(stacks.stacks, crateMover, checkpointIndex * interval, moves);
+            return stacks;
         }
     }
 
@@ -1,70 +1,247 @@
-import java.util.Collection;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 
 public class Day6 {
-    public static void main(String[] args) {
-        var scanner = new Scanner(System.in);
-        var line = scanner.nextLine();
-        var bufferOf4 = DatastreamBuffer.build(4, line);
-        System.out.println("bufferOf4.firstMarker().endCharacterIndex() = " + bufferOf4.firstMarker().endCharacterIndex());
-        var bufferOf14 = DatastreamBuffer.build(14, line);
-        System.out.println("bufferOf14.firstMarker().endCharacterIndex() = " + bufferOf14.firstMarker().endCharacterIndex());
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("parallel")) {
+            var path = Path.of(args[1]);
+            var sequenceLengths = args.length > 2
+                    ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                    : new int[] {4, 14};
+            for (var sequenceLength : sequenceLengths) {
+                System.out.println("firstMarker(%d) = %d".formatted(sequenceLength, MappedMarkerSearch.firstMarker(path, sequenceLength)));
+            }
+            return;
+        }
+        if(args.length > 0 && args[0].equals("listen")) {
+            var buffer = new ListeningDatastreamBuffer(Integer.parseInt(args[1]), marker -> System.out.println("marker = " + marker));
+            var chunk = new byte[1 << 16];
+            int read;
+            while((read = System.in.read(chunk)) >= 0) {
+                buffer.push(chunk, 0, read);
+            }
+            return;
+        }
+        var markers = MarkerSearch.firstMarkers(System.in, 4, 14);
+        System.out.println("firstMarker(4) = " + markers[0]);
+        System.out.println("firstMarker(14) = " + markers[1]);
     }
 
+    // Sliding window over the stream with a count per symbol and the number of symbols seen more than once in it
     private static class DatastreamBuffer {
-        private final Collection<Sequence> sequences;
-
-        public DatastreamBuffer(String line, int sequenceLength) {
-            sequences = IntStream
-                    .range(0, line.length() - sequenceLength - 1)
-                    .mapToObj(startIndex -> {
-                        var endIndex = startIndex + sequenceLength;
-                        return new Sequence(endIndex, line.substring(startIndex, endIndex));
-                    })
-                    .toList();
+        private final int[] counts = new int[256];
+        private final byte[] window;
+        private int slot;
+        private long position;
+        private int duplicates;
+
+        public DatastreamBuffer(int sequenceLength) {
+            if(sequenceLength < 1) {
+                throw new IllegalArgumentException("Sequence length must be positive, was " + sequenceLength);
+            }
+            window = new byte[sequenceLength];
+        }
+
+        public static DatastreamBuffer build(int sequenceLength) {
+            return new DatastreamBuffer(sequenceLength);
         }
 
-        public static DatastreamBuffer build(int sequenceLength, String line) {
-            return new DatastreamBuffer(line, sequenceLength);
+        // Adds the character to the window and tells whether the window is now a marker
+        public boolean accept(byte character) {
+            if(position >= window.length && --counts[window[slot] & 0xFF] == 1) {
+                duplicates--;
+            }
+            window[slot] = character;
+            slot = slot + 1 == window.length ? 0 : slot + 1;
+            if(++counts[character & 0xFF] == 2) {
+                duplicates++;
+            }
+            position++;
+            return position >= window.length && duplicates == 0;
         }
 
-        public Sequence firstMarker() {
-            return sequences.stream()
-                    .filter(Sequence::areAllDifferent)
-                    .findFirst().orElseThrow();
+        public long position() {
+            return position;
+        }
+    }
+
+    @FunctionalInterface
+    private interface MarkerListener {
+        void markerFound(long endCharacterIndex);
+    }
+
+    // Push style buffer for long running feeds, reports every marker and keeps its window from one chunk to the next.
+    // Line breaks are skipped so a feed may be split in lines.
+    private static class ListeningDatastreamBuffer {
+        private final DatastreamBuffer buffer;
+        private final MarkerListener listener;
+
+        public ListeningDatastreamBuffer(int sequenceLength, MarkerListener listener) {
+            this.buffer = DatastreamBuffer.build(sequenceLength);
+            this.listener = listener;
+        }
+
+        public void push(byte[] chunk, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if(chunk[i] != '\n' && chunk[i] != '\r' && buffer.accept(chunk[i])) {
+                    listener.markerFound(buffer.position());
+                }
+            }
         }
     }
 
-    private static class Sequence {
-        private final int endCharacterIndex;
-        private final String sequence;
+    // Finds the first marker of several lengths in one scan. The last index of every symbol gives the length of the
+    // longest all different run ending at the current character, a marker of length n ends where that run reaches n.
+    private static class MarkerSearch {
+        private static final int BUFFER_SIZE = 1 << 16;
 
-        public Sequence(int endCharacterIndex, String sequence) {
-            this.endCharacterIndex = endCharacterIndex;
-            this.sequence = sequence;
+        // Number of characters read up to and including the first marker of each length, -1 when there is none
+        public static long[] firstMarkers(InputStream input, int... sequenceLengths) throws IOException {
+            var order = sortedIndices(sequenceLengths);
+            var markers = new long[sequenceLengths.length];
+            Arrays.fill(markers, -1);
+            var lastIndices = new long[256];
+            Arrays.fill(lastIndices, -1);
+            var next = 0;
+            var position = 0L;
+            var runLength = 0L;
+            var buffer = new byte[BUFFER_SIZE];
+            int read;
+            reading:
+            while(next < order.length && (read = input.read(buffer)) >= 0) {
+                for (int i = 0; i < read && next < order.length; i++) {
+                    if(buffer[i] == '\n' || buffer[i] == '\r') {
+                        break reading;
+                    }
+                    var symbol = buffer[i] & 0xFF;
+                    runLength = Math.min(runLength + 1, position - lastIndices[symbol]);
+                    lastIndices[symbol] = position++;
+                    while(next < order.length && runLength >= sequenceLengths[order[next]]) {
+                        markers[order[next++]] = position;
+                    }
+                }
+            }
+            return markers;
         }
 
-        public int endCharacterIndex() {
-            return endCharacterIndex;
+        private static int[] sortedIndices(int[] sequenceLengths) {
+            for (var sequenceLength : sequenceLengths) {
+                if(sequenceLength < 1) {
+                    throw new IllegalArgumentException("Sequence length must be positive, was " + sequenceLength);
+                }
+            }
+            return IntStream.range(0, sequenceLengths.length).boxed()
+                    .sorted(Comparator.comparingInt(index -> sequenceLengths[index]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
         }
+    }
+
+    // Searches a memory mapped datastream in chunks on a fork-join pool, each chunk also reads the sequenceLength - 1
+    // characters before it so markers crossing a chunk border are found by the chunk they end in
+    private static class MappedMarkerSearch {
+        private static final long CHUNK_SIZE = 1 << 24;
 
-        public boolean areAllDifferent() {
-            var allDifferent = true;
-            for (int i = 0; i < sequence.length() - 1; i++) {
-                for (int j = i + 1; j < sequence.length(); j++) {
-                    allDifferent &= !same(i, j);
+        // Number of characters up to and including the first marker, -1 when there is none
+        public static long firstMarker(Path path, int sequenceLength) throws IOException {
+            if(sequenceLength < 1) {
+                throw new IllegalArgumentException("Sequence length must be positive, was " + sequenceLength);
+            }
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                var length = datastreamLength(channel);
+                var best = new AtomicLong(Long.MAX_VALUE);
+                var chunks = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                ForkJoinPool.commonPool().invoke(new ChunkSearch(channel, length, sequenceLength, best, 0, chunks));
+                return best.get() == Long.MAX_VALUE ? -1 : best.get();
+            }
+        }
+
+        // The datastream ends at the trailing line break, if there is one
+        private static long datastreamLength(FileChannel channel) throws IOException {
+            var length = channel.size();
+            var character = ByteBuffer.allocate(1);
+            while(length > 0) {
+                character.clear();
+                channel.read(character, length - 1);
+                var last = character.get(0);
+                if(last != '\n' && last != '\r') {
+                    break;
                 }
+                length--;
             }
-            return allDifferent;
+            return length;
         }
+    }
+
+    @SuppressWarnings("serial")
+    private static class ChunkSearch extends RecursiveAction {
+        private final FileChannel channel;
+        private final long length;
+        private final int sequenceLength;
+        private final AtomicLong best;
+        private final long firstChunk;
+        private final long endChunk;
 
-        private boolean same(int index, int otherIndex) {
-            return character(index).equals(character(otherIndex));
+        public ChunkSearch(FileChannel channel, long length, int sequenceLength, AtomicLong best, long firstChunk, long endChunk) {
+            this.channel = channel;
+            this.length = length;
+            this.sequenceLength = sequenceLength;
+            this.best = best;
+            this.firstChunk = firstChunk;
+            this.endChunk = endChunk;
         }
 
-        private String character(int index) {
-            return sequence.substring(index, index + 1);
+        @Override
+        protected void compute() {
+            if(endChunk - firstChunk > 1) {
+                var middleChunk = (firstChunk + endChunk) >>> 1;
+                invokeAll(new ChunkSearch(channel, length, sequenceLength, best, firstChunk, middleChunk),
+                        new ChunkSearch(channel, length, sequenceLength, best, middleChunk, endChunk));
+            } else if(endChunk > firstChunk) {
+                searchChunk();
+            }
+        }
+
+        // Chunks starting after a marker already found can not hold an earlier one and are skipped or abandoned
+        private void searchChunk() {
+            var chunkStart = firstChunk * MappedMarkerSearch.CHUNK_SIZE;
+            if(chunkStart >= best.get()) {
+                return;
+            }
+            var start = Math.max(0, chunkStart - (sequenceLength - 1));
+            var end = Math.min(length, chunkStart + MappedMarkerSearch.CHUNK_SIZE);
+            try {
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                var lastIndices = new int[256];
+                Arrays.fill(lastIndices, -1);
+                var runLength = 0;
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if((i & 0xFFFF) == 0 && chunkStart >= best.get()) {
+                        return;
+                    }
+                    var symbol = buffer.get(i) & 0xFF;
+                    runLength = Math.min(runLength + 1, i - lastIndices[symbol]);
+                    lastIndices[symbol] = i;
+                    if(runLength >= sequenceLength) {
+                        var marker = start + i + 1;
+                        best.accumulateAndGet(marker, Math::min);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 }
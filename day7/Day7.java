@@ -227,11 +227,11 @@ public class Day7 {
 
         private static class FileResult extends Result {
             private final String filename;
-            private final int size;
+            private final long size;
 
             public FileResult(String sizeString, String filename) {
                 this.filename = filename;
-                this.size = Integer.parseInt(sizeString);
+                this.size = Long.parseLong(sizeString);
             }
 
             @Override
@@ -252,14 +252,14 @@ public class Day7 {
     private static class File {
         @SuppressWarnings("FieldCanBeLocal")
         private final String filename;
-        private final int size;
+        private final long size;
 
-        public File(String filename, int size) {
+        public File(String filename, long size) {
             this.filename = filename;
             this.size = size;
         }
 
-        public int size() {
+        public long size() {
             return size;
         }
 
@@ -278,9 +278,12 @@ public class Day7 {
 
     private static class Directory {
         private final String directoryName;
-        private final ArrayList<Directory> subdirectories = new ArrayList<>();
+        // Keyed by name, in the order the directories were created so toString(int) output stays the same
+        private final LinkedHashMap<String, Directory> subdirectories = new LinkedHashMap<>();
         private final Directory parent;
         private final ArrayList<File> files = new ArrayList<>();
+        // Sum of all files in this directory and below, kept up to date by addFile
+        private long size;
 
         private Directory(String directoryName, Directory parent) {
             this.directoryName = directoryName;
@@ -297,19 +300,11 @@ public class Day7 {
         }
 
         public Stream<Directory> getAllDirectories() {
-            return Stream.concat(Stream.of(this), subdirectories.stream().flatMap(Directory::getAllDirectories));
+            return Stream.concat(Stream.of(this), subdirectories.values().stream().flatMap(Directory::getAllDirectories));
         }
 
-        public int size() {
-            return subdirectoriesSize() + filesSize();
-        }
-
-        private int filesSize() {
-            return files.stream().mapToInt(File::size).sum();
-        }
-
-        private int subdirectoriesSize() {
-            return subdirectories.stream().mapToInt(Directory::size).sum();
+        public long size() {
+            return size;
         }
 
 
@@ -325,34 +320,37 @@ public class Day7 {
         }
 
         public boolean hasSubdirectory(String directoryName) {
-            return subdirectories.stream().anyMatch(d -> d.hasName(directoryName));
-        }
-
-        private boolean hasName(String directoryName) {
-            return this.directoryName.equals(directoryName);
+            return subdirectories.containsKey(directoryName);
         }
 
         public void createDirectory(String directoryName) {
-            this.subdirectories.add(new Directory(directoryName, this));
+            this.subdirectories.put(directoryName, new Directory(directoryName, this));
         }
 
         public Directory getSubdirectory(String directoryName) {
-            return subdirectories.stream().filter(d -> d.hasName(directoryName)).findFirst().orElseThrow();
+            var subdirectory = subdirectories.get(directoryName);
+            if(subdirectory == null) {
+                throw new NoSuchElementException("No subdirectory '%s' in %s".formatted(directoryName, name()));
+            }
+            return subdirectory;
         }
 
-        public int sumOfAllDirectoriesWithSizeUpTo(int maxSize) {
-            return getAllDirectories().mapToInt(Directory::size).filter(size -> size <= maxSize).sum();
+        public long sumOfAllDirectoriesWithSizeUpTo(long maxSize) {
+            return getAllDirectories().mapToLong(Directory::size).filter(size -> size <= maxSize).sum();
         }
 
         public void addFile(File file) {
             files.add(file);
+            for (var directory = this; directory != null; directory = directory.parent) {
+                directory.size += file.size();
+            }
         }
 
         @Override
         public String toString() {
             return "Directory{" +
                     "directoryName='" + directoryName + '\'' +
-                    ", subdirectories=" + subdirectories +
+                    ", subdirectories=" + subdirectories.values() +
                     ", parent=" + (parent == null ? "null" : parent.name()) +
                     ", files=" + files +
                     '}';
@@ -360,7 +358,7 @@ public class Day7 {
 
         public String toString(int indentLevel) {
             var stringBuilder = new StringBuilder("  ".repeat(indentLevel) + "- %s (dir, size=%d)".formatted(directoryName, size()));
-            for (var subdirectory : subdirectories) {
+            for (var subdirectory : subdirectories.values()) {
                 stringBuilder.append("\n");
                 stringBuilder.append(subdirectory.toString(indentLevel + 1));
             }
@@ -375,9 +373,9 @@ public class Day7 {
             return "\"" + directoryName + "\"";
         }
 
-        public Directory findSmallestDirectoryThatWillFreeAtLeast(int requiredFreeSpace) {
+        public Directory findSmallestDirectoryThatWillFreeAtLeast(long requiredFreeSpace) {
             var toRemoveSize = size() - requiredFreeSpace;
-            return getAllDirectories().sorted(Comparator.comparingInt(Directory::size)).filter(d -> d.size() >= toRemoveSize).peek(d -> System.out.println(d.size())).findFirst().orElseThrow();
+            return getAllDirectories().sorted(Comparator.comparingLong(Directory::size)).filter(d -> d.size() >= toRemoveSize).peek(d -> System.out.println(d.size())).findFirst().orElseThrow();
         }
     }
 }